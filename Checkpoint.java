@@ -0,0 +1,307 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+
+/**
+ * A snapshot of a training run: the network's thresholds and weights, the
+ * number of completed iterations, the state of the random number generator and
+ * the size and seed of the dataset, if any.
+ * <p>
+ * A captured checkpoint keeps its parameters in storage from the network's own
+ * arena, so an off-heap network is checkpointed off-heap. A checkpoint read
+ * from a file only holds its header; the parameters are streamed from the file
+ * straight into the network when it is restored.
+ * @since 10/19/26
+ */
+class Checkpoint {
+
+
+  /** Identifies checkpoint files ("KSNN") */
+  private static final int MAGIC = 0x4B534E4E;
+
+  /** The version of the checkpoint file format */
+  private static final int VERSION = 3;
+
+  /** The number of parameters read or written at a time */
+  private static final int CHUNK = 8192;
+
+  /** The number of iterations completed */
+  private int iteration;
+
+  /** The number of input nodes of the network */
+  private int inputNodes;
+
+  /** The number of hidden nodes of the network */
+  private int hiddenNodes;
+
+  /** The number of output nodes of the network */
+  private int outputNodes;
+
+  /** The learning rate of the network */
+  private double learningRate;
+
+  /** The thresholds followed by the weights of the network, or null if read from a file */
+  private DoubleStorage parameters = null;
+
+  /** The file this checkpoint was read from, or null if it was captured */
+  private Path file = null;
+
+  /** The serialized random number generator */
+  private byte[] randomState = new byte[0];
+
+  /** The number of samples in the dataset, or 0 if training used new songs */
+  private int datasetSize;
+
+  /** The seed the dataset was generated from */
+  private long datasetSeed;
+
+
+  /**
+   * Copies the current state of a training run into this checkpoint.
+   * @param net - the neural network being trained
+   * @param data - the dataset being trained on, or null
+   * @param completedIterations - the number of iterations completed
+   * @param random - the random number generator songs are created with
+   */
+  void capture(final NeuralNet net, final Dataset data, final int completedIterations,
+               final Random random) {
+    this.iteration = completedIterations;
+    this.datasetSize = (data == null) ? 0 : data.size();
+    this.datasetSeed = (data == null) ? 0L : data.getSeed();
+    this.inputNodes = net.getInputNodes();
+    this.hiddenNodes = net.getHiddenNodes();
+    this.outputNodes = net.getOutputNodes();
+    this.learningRate = net.getLearningRate();
+    long count = parameterCount(inputNodes, hiddenNodes, outputNodes);
+    if (parameters == null || parameters.size() != count) {
+      parameters = net.getArena().allocate(count);
+    }
+    net.copyParameters(parameters);
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+        out.writeObject(random);
+      }
+      randomState = bytes.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not capture random number generator.", e);
+    }
+  }
+
+
+  /**
+   * Loads the thresholds and weights of this checkpoint into a network.
+   * @param net - a network with the same layer sizes and learning rate
+   * @throws IOException if the checkpoint's file can no longer be read
+   */
+  void restore(final NeuralNet net) throws IOException {
+    if (net.getInputNodes() != inputNodes || net.getHiddenNodes() != hiddenNodes
+      || net.getOutputNodes() != outputNodes) {
+      throw new IllegalArgumentException("Checkpoint is for a " + inputNodes + "x" +
+        hiddenNodes + "x" + outputNodes + " neural network.");
+    }
+    if (Double.compare(net.getLearningRate(), learningRate) != 0) {
+      throw new IllegalArgumentException("Checkpoint was trained with a " +
+        "learning rate of " + learningRate + ".");
+    }
+    if (parameters != null) {
+      double[] chunk = new double[CHUNK];
+      for (long p = 0; p < parameters.size(); p += CHUNK) {
+        int length = (int) Math.min(CHUNK, parameters.size() - p);
+        parameters.copyTo(p, chunk, 0, length);
+        net.setParameters(p, chunk, length);
+      }
+    } else {
+      read(file, net);
+    }
+  }
+
+
+  /**
+   * Gets the number of iterations completed.
+   * @return completed iterations
+   */
+  int getIteration() {
+    return this.iteration;
+  }
+
+
+  /**
+   * Gets the number of samples in the dataset that was trained on.
+   * @return dataset size, or 0 if training used new songs
+   */
+  int getDatasetSize() {
+    return this.datasetSize;
+  }
+
+
+  /**
+   * Gets the seed the dataset was generated from.
+   * @return dataset seed
+   */
+  long getDatasetSeed() {
+    return this.datasetSeed;
+  }
+
+
+  /**
+   * Recreates the random number generator at the point it was captured.
+   * @return random number generator
+   */
+  Random getRandom() {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(randomState))) {
+      return (Random) in.readObject();
+    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+      throw new IllegalStateException("Could not restore random number generator.", e);
+    }
+  }
+
+
+  /**
+   * Writes this checkpoint to a file and forces it to disk.
+   * @param file - the file to write
+   * @throws IOException if the file cannot be written
+   */
+  void writeTo(final Path file) throws IOException {
+    if (parameters == null) {
+      throw new IllegalStateException("Only a captured checkpoint can be written.");
+    }
+    try (FileOutputStream stream = new FileOutputStream(file.toFile())) {
+      CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(stream), new CRC32());
+      DataOutputStream out = new DataOutputStream(checked);
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(iteration);
+      out.writeInt(inputNodes);
+      out.writeInt(hiddenNodes);
+      out.writeInt(outputNodes);
+      out.writeDouble(learningRate);
+      out.writeLong(parameters.size());
+      double[] chunk = new double[CHUNK];
+      for (long p = 0; p < parameters.size(); p += CHUNK) {
+        int length = (int) Math.min(CHUNK, parameters.size() - p);
+        parameters.copyTo(p, chunk, 0, length);
+        for (int i = 0; i < length; i++) {
+          out.writeDouble(chunk[i]);
+        }
+      }
+      out.writeInt(randomState.length);
+      out.write(randomState);
+      out.writeInt(datasetSize);
+      out.writeLong(datasetSeed);
+      out.flush();
+      out.writeLong(checked.getChecksum().getValue());
+      out.flush();
+      stream.getFD().sync();
+    }
+  }
+
+
+  /**
+   * Reads the header of a checkpoint from a file and verifies the whole file.
+   * The parameters are not kept; {@link #restore} reads them again.
+   * @param file - the file to read
+   * @return the checkpoint
+   * @throws IOException if the file cannot be read or is not a valid checkpoint
+   */
+  static Checkpoint readFrom(final Path file) throws IOException {
+    Checkpoint checkpoint = read(file, null);
+    checkpoint.file = file;
+    return checkpoint;
+  }
+
+
+  /**
+   * Reads and verifies a checkpoint file, optionally loading its parameters
+   * into a network as they are read.
+   * @param file - the file to read
+   * @param target - the network to load the parameters into, or null
+   * @return the checkpoint, without its parameters
+   * @throws IOException if the file cannot be read or is not a valid checkpoint
+   */
+  private static Checkpoint read(final Path file, final NeuralNet target) throws IOException {
+    try (InputStream stream = new BufferedInputStream(Files.newInputStream(file))) {
+      CheckedInputStream checked = new CheckedInputStream(stream, new CRC32());
+      DataInputStream in = new DataInputStream(checked);
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a checkpoint file: " + file);
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported checkpoint version " + version + ": " + file);
+      }
+      Checkpoint checkpoint = new Checkpoint();
+      checkpoint.iteration = in.readInt();
+      checkpoint.inputNodes = in.readInt();
+      checkpoint.hiddenNodes = in.readInt();
+      checkpoint.outputNodes = in.readInt();
+      checkpoint.learningRate = in.readDouble();
+      if (checkpoint.inputNodes < 1 || checkpoint.hiddenNodes < 1 || checkpoint.outputNodes < 1) {
+        throw new IOException("Corrupt checkpoint layer sizes: " + file);
+      }
+      long parameterCount = in.readLong();
+      if (parameterCount != parameterCount(checkpoint.inputNodes, checkpoint.hiddenNodes,
+        checkpoint.outputNodes)) {
+        throw new IOException("Corrupt checkpoint parameters: " + file);
+      }
+      if (target != null && (target.getInputNodes() != checkpoint.inputNodes
+        || target.getHiddenNodes() != checkpoint.hiddenNodes
+        || target.getOutputNodes() != checkpoint.outputNodes)) {
+        throw new IOException("Checkpoint changed since it was read: " + file);
+      }
+      byte[] bytes = new byte[CHUNK * Double.BYTES];
+      double[] chunk = new double[CHUNK];
+      for (long p = 0; p < parameterCount; p += CHUNK) {
+        int length = (int) Math.min(CHUNK, parameterCount - p);
+        in.readFully(bytes, 0, length * Double.BYTES);
+        if (target != null) {
+          ByteBuffer.wrap(bytes, 0, length * Double.BYTES).asDoubleBuffer().get(chunk, 0, length);
+          target.setParameters(p, chunk, length);
+        }
+      }
+      int randomLength = in.readInt();
+      if (randomLength < 0 || randomLength > 4096) {
+        throw new IOException("Corrupt checkpoint random state: " + file);
+      }
+      checkpoint.randomState = new byte[randomLength];
+      in.readFully(checkpoint.randomState);
+      checkpoint.datasetSize = in.readInt();
+      checkpoint.datasetSeed = in.readLong();
+      long expected = checked.getChecksum().getValue();
+      if (in.readLong() != expected || in.read() != -1) {
+        throw new IOException("Checkpoint checksum mismatch: " + file);
+      }
+      return checkpoint;
+    }
+  }
+
+
+  /**
+   * Computes the number of thresholds and weights of a network.
+   * @param inputNodes - the number of input nodes
+   * @param hiddenNodes - the number of hidden nodes
+   * @param outputNodes - the number of output nodes
+   * @return parameter count
+   */
+  private static long parameterCount(final int inputNodes, final int hiddenNodes,
+                                     final int outputNodes) {
+    long totalNodes = (long) inputNodes + hiddenNodes + outputNodes;
+    return totalNodes + totalNodes * totalNodes;
+  }
+}
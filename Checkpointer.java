@@ -0,0 +1,266 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Periodically saves checkpoints of a training run without pausing training.
+ * Each checkpoint is copied into one of two buffers and written to disk by a
+ * background thread while training continues. Files are written under a
+ * temporary name, renamed into place and the directory is synced, so a crash
+ * never leaves a partial checkpoint behind. If the writer falls behind, an
+ * unwritten checkpoint is replaced by the newer one. Only checkpoints no newer
+ * than the latest one written are pruned, so files from another run are never
+ * mistaken for older ones.
+ * @since 10/19/26
+ */
+class Checkpointer implements AutoCloseable {
+
+
+  /** The number of checkpoint files kept in the directory */
+  private static final int KEEP = 2;
+
+  /** The prefix of checkpoint file names */
+  private static final String PREFIX = "checkpoint-";
+
+  /** The suffix of checkpoint file names */
+  private static final String SUFFIX = ".ckpt";
+
+  /** The directory checkpoints are written to */
+  private final Path directory;
+
+  /** The number of iterations between checkpoints */
+  private final int interval;
+
+  /** The neural network being trained */
+  private final NeuralNet net;
+
+  /** The dataset being trained on, or null */
+  private final Dataset data;
+
+  /** The two checkpoint buffers */
+  private final Checkpoint[] buffers = { new Checkpoint(), new Checkpoint() };
+
+  /** The checkpoint waiting to be written, or null */
+  private Checkpoint pending = null;
+
+  /** The checkpoint being written, or null */
+  private Checkpoint writing = null;
+
+  /** The iteration count of the last checkpoint saved */
+  private int lastSaved = -1;
+
+  /** Whether no more checkpoints will be saved */
+  private boolean closed = false;
+
+  /** The background thread that writes checkpoints */
+  private final Thread writer;
+
+
+  /**
+   * Constructor.
+   * @param directory - the directory to write checkpoints to
+   * @param interval - the number of iterations between checkpoints
+   * @param net - the neural network being trained
+   * @param data - the dataset being trained on, or null
+   * @throws IOException if the directory cannot be created
+   */
+  Checkpointer(final Path directory, final int interval, final NeuralNet net,
+               final Dataset data) throws IOException {
+    if (interval < 1) {
+      throw new IllegalArgumentException("Checkpoint interval must be positive: " + interval);
+    }
+    this.directory = Files.createDirectories(directory);
+    this.interval = interval;
+    this.net = net;
+    this.data = data;
+    this.writer = new Thread(this::writeCheckpoints, "checkpoint-writer");
+    this.writer.start();
+  }
+
+
+  /**
+   * Saves a checkpoint if a full interval of iterations has been completed.
+   * @param completedIterations - the number of iterations completed
+   * @param random - the random number generator songs are created with
+   */
+  void checkpoint(final int completedIterations, final Random random) {
+    if (completedIterations % interval == 0) {
+      save(completedIterations, random);
+    }
+  }
+
+
+  /**
+   * Copies the current state of training into a free buffer and hands it to
+   * the writer thread.
+   * @param completedIterations - the number of iterations completed
+   * @param random - the random number generator songs are created with
+   */
+  synchronized void save(final int completedIterations, final Random random) {
+    if (closed) {
+      throw new IllegalStateException("Checkpointer has already been closed.");
+    }
+    if (completedIterations == lastSaved) {
+      return;
+    }
+    lastSaved = completedIterations;
+    Checkpoint target = (buffers[0] == writing) ? buffers[1] : buffers[0];
+    target.capture(net, data, completedIterations, random);
+    pending = target;
+    notifyAll();
+  }
+
+
+  /**
+   * Finishes writing any remaining checkpoint and stops the writer thread.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+    }
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+
+  /**
+   * Returns whether a directory holds any checkpoint files.
+   * @param directory - the directory checkpoints are written to
+   * @return true if there is at least one checkpoint file
+   * @throws IOException if the directory cannot be listed
+   */
+  static boolean hasCheckpoints(final Path directory) throws IOException {
+    return !listCheckpoints(directory).isEmpty();
+  }
+
+
+  /**
+   * Finds the most recent checkpoint in a directory that can be read.
+   * @param directory - the directory checkpoints were written to
+   * @return the latest valid checkpoint, or null if there is none
+   * @throws IOException if the directory cannot be listed
+   */
+  static Checkpoint loadLatest(final Path directory) throws IOException {
+    for (Path file : listCheckpoints(directory)) {
+      try {
+        return Checkpoint.readFrom(file);
+      } catch (IOException e) {
+        System.err.println("Skipping invalid checkpoint " + file + ": " + e);
+      }
+    }
+    return null;
+  }
+
+
+  /**
+   * Writes checkpoints as they are handed over until closed.
+   */
+  private void writeCheckpoints() {
+    while (true) {
+      Checkpoint next;
+      synchronized (this) {
+        while (pending == null && !closed) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (pending == null) {
+          return;
+        }
+        next = pending;
+        pending = null;
+        writing = next;
+      }
+      try {
+        write(next);
+      } catch (IOException e) {
+        System.err.println("Failed to write checkpoint: " + e.getMessage());
+      }
+      synchronized (this) {
+        writing = null;
+      }
+    }
+  }
+
+
+  /**
+   * Writes a checkpoint to a temporary file, renames it into place and removes
+   * older checkpoints.
+   * @param checkpoint - the checkpoint to write
+   * @throws IOException if the checkpoint cannot be written
+   */
+  private void write(final Checkpoint checkpoint) throws IOException {
+    String name = String.format("%s%010d%s", PREFIX, checkpoint.getIteration(), SUFFIX);
+    Path target = directory.resolve(name);
+    Path temporary = directory.resolve(name + ".tmp");
+    checkpoint.writeTo(temporary);
+    try {
+      Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+    syncDirectory();
+
+    // Keep the newest checkpoints up to this one; newer names belong to another run
+    int kept = 0;
+    for (Path file : listCheckpoints(directory)) {
+      if (file.getFileName().toString().compareTo(name) > 0) {
+        continue;
+      }
+      if (++kept > KEEP) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+
+  /**
+   * Forces the directory entry of a renamed checkpoint to disk.
+   */
+  private void syncDirectory() {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      // Some platforms cannot open or sync a directory
+    }
+  }
+
+
+  /**
+   * Lists the checkpoint files in a directory, newest first.
+   * @param directory - the directory checkpoints were written to
+   * @return checkpoint files
+   * @throws IOException if the directory cannot be listed
+   */
+  private static List<Path> listCheckpoints(final Path directory) throws IOException {
+    List<Path> files = new ArrayList<>();
+    if (!Files.isDirectory(directory)) {
+      return files;
+    }
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+      for (Path file : stream) {
+        files.add(file);
+      }
+    }
+    Collections.sort(files, Collections.reverseOrder());
+    return files;
+  }
+}
@@ -0,0 +1,91 @@
+import java.util.Random;
+
+
+/**
+ * A fixed set of preprocessed songs to train on.
+ * Each sample is stored as the frequency of each of the 12 notes followed by the
+ * key of the song, in a single buffer allocated from a {@link MemoryArena}.
+ * The songs are generated from a seed, so the same seed and size always give
+ * the same dataset.
+ * @since 10/19/26
+ */
+class Dataset {
+
+
+  /** The number of doubles stored per sample: 12 frequencies and the key */
+  private static final int STRIDE = 13;
+
+  /** The number of samples */
+  private final int size;
+
+  /** The seed the songs were generated from */
+  private final long seed;
+
+  /** The samples, one after another */
+  private final DoubleStorage samples;
+
+
+  /**
+   * Constructor.
+   * Generates a new random song for every sample.
+   * @param size - the number of samples
+   * @param seed - the seed to generate the songs from
+   * @param arena - the arena to allocate the samples from
+   */
+  Dataset(final int size, final long seed, final MemoryArena arena) {
+    if (size < 1) {
+      throw new IllegalArgumentException("Dataset size must be positive: " + size);
+    }
+    this.size = size;
+    this.seed = seed;
+    this.samples = arena.allocate((long) size * STRIDE);
+    Random random = new Random(seed);
+    for (int sample = 0; sample < size; sample++) {
+      Song song = new Song(random);
+      samples.copyFrom(song.getFrequencies(), 0, (long) sample * STRIDE, 12);
+      samples.set((long) sample * STRIDE + 12, song.getKeyOfSong());
+    }
+  }
+
+
+  /**
+   * Gets the number of samples.
+   * @return dataset size
+   */
+  int size() {
+    return this.size;
+  }
+
+
+  /**
+   * Gets the seed the songs were generated from.
+   * @return seed
+   */
+  long getSeed() {
+    return this.seed;
+  }
+
+
+  /**
+   * Gets the key of a sample.
+   * @param sample - the index of the sample
+   * @return key of the song
+   */
+  int getKey(final int sample) {
+    return (int) samples.get((long) sample * STRIDE + 12);
+  }
+
+
+  /**
+   * Copies the note frequencies of a sample into storage.
+   * @param sample - the index of the sample
+   * @param target - the storage to copy into, starting at index 0
+   * @param count - the number of frequencies to copy (at most 12)
+   */
+  void copyFrequencies(final int sample, final DoubleStorage target, final int count) {
+    long first = (long) sample * STRIDE;
+    for (int i = 0; i < Math.min(count, 12); i++) {
+      target.set(i, samples.get(first + i));
+    }
+  }
+}
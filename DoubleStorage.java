@@ -0,0 +1,76 @@
+/**
+ * A fixed-size run of doubles allocated by a {@link MemoryArena}.
+ * Indexes are longs so that off-heap storage can hold more than one array's
+ * worth of doubles. Every call site sees a single storage class in a given run,
+ * so the JIT inlines accesses from its type profile; on the heap they compile
+ * down to plain array accesses. A run that never allocates off-heap also never
+ * loads {@link OffHeapDoubleStorage} (see {@link OffHeapDoubleStorage#allocate}).
+ * @since 10/19/26
+ */
+abstract class DoubleStorage {
+
+
+  /**
+   * Gets the number of doubles stored.
+   * @return size
+   */
+  abstract long size();
+
+
+  /**
+   * Reads a double.
+   * @param index - the index of the double
+   * @return the double at index
+   */
+  abstract double get(long index);
+
+
+  /**
+   * Writes a double.
+   * @param index - the index of the double
+   * @param value - the new value
+   */
+  abstract void set(long index, double value);
+
+
+  /**
+   * Copies doubles out into an array.
+   * @param from - the index of the first double to copy
+   * @param target - the array to copy into
+   * @param offset - the position in target to start at
+   * @param length - the number of doubles to copy
+   */
+  void copyTo(final long from, final double[] target, final int offset, final int length) {
+    for (int i = 0; i < length; i++) {
+      target[offset + i] = get(from + i);
+    }
+  }
+
+
+  /**
+   * Copies doubles in from an array.
+   * @param source - the array to copy from
+   * @param offset - the position in source to start at
+   * @param to - the index of the first double to overwrite
+   * @param length - the number of doubles to copy
+   */
+  void copyFrom(final double[] source, final int offset, final long to, final int length) {
+    for (int i = 0; i < length; i++) {
+      set(to + i, source[offset + i]);
+    }
+  }
+
+
+  /**
+   * Copies doubles out into other storage.
+   * @param from - the index of the first double to copy
+   * @param target - the storage to copy into
+   * @param to - the index in target of the first double to overwrite
+   * @param length - the number of doubles to copy
+   */
+  void copyTo(final long from, final DoubleStorage target, final long to, final long length) {
+    for (long i = 0; i < length; i++) {
+      target.set(to + i, get(from + i));
+    }
+  }
+}
@@ -0,0 +1,278 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A group of independently trained neural networks that vote together.
+ * The members are trained at the same time on separate threads. For inference
+ * the weights of every member are packed one after another into a single array,
+ * and the output values of all members are averaged.
+ * @since 10/19/26
+ */
+class Ensemble {
+
+
+  /**
+   * Receives the progress of training.
+   */
+  interface Listener {
+
+    /**
+     * Called periodically on the thread that started training.
+     * @param trained - the number of iterations completed by all members so far
+     * @param correct - the number of those iterations that were guessed correctly
+     */
+    void progress(long trained, long correct);
+  }
+
+  /** The number of iterations a member trains between progress updates */
+  private static final int REPORT_INTERVAL = 1000;
+
+  /** The number of milliseconds between progress reports */
+  private static final long REPORT_PERIOD = 1000;
+
+  /** The neural networks in the ensemble */
+  private final NeuralNet[] members;
+
+  /** The number of input nodes of every member */
+  private final int inputNodes;
+
+  /** The number of hidden nodes of every member */
+  private final int hiddenNodes;
+
+  /** The number of output nodes of every member */
+  private final int outputNodes;
+
+  /**
+   * The packed weights of every member. Each member takes up {@link #stride}
+   * doubles: the input to hidden weights (one row of inputs per hidden node),
+   * the hidden thresholds, the hidden to output weights (one row of hidden
+   * nodes per output node) and the output thresholds.
+   */
+  private double[] packed;
+
+  /** The number of packed doubles per member */
+  private final int stride;
+
+
+  /**
+   * Constructor.
+   * @param members - neural networks with the same number of nodes in each layer
+   */
+  Ensemble(final NeuralNet[] members) {
+    if (members.length < 1) {
+      throw new IllegalArgumentException("An ensemble needs at least one neural network.");
+    }
+    this.members = members;
+    this.inputNodes = members[0].getInputNodes();
+    this.hiddenNodes = members[0].getHiddenNodes();
+    this.outputNodes = members[0].getOutputNodes();
+    for (NeuralNet member : members) {
+      if (member.getInputNodes() != inputNodes || member.getHiddenNodes() != hiddenNodes
+        || member.getOutputNodes() != outputNodes) {
+        throw new IllegalArgumentException("Every neural network in an ensemble " +
+          "must have the same number of nodes in each layer.");
+      }
+    }
+    long stride = (long) hiddenNodes * inputNodes + hiddenNodes + (long) outputNodes * hiddenNodes
+      + outputNodes;
+    if (stride * members.length > MemoryArena.MAX_ARRAY_LENGTH
+      || members[0].getParameterCount() > MemoryArena.MAX_ARRAY_LENGTH) {
+      throw new IllegalArgumentException("The ensemble is too large to pack into an array.");
+    }
+    this.stride = (int) stride;
+  }
+
+
+  /**
+   * Gets the number of neural networks in the ensemble.
+   * @return ensemble size
+   */
+  int size() {
+    return members.length;
+  }
+
+
+  /**
+   * Trains every member on its own random songs, one thread per core.
+   * @param iterations - the number of training iterations for each member
+   * @param listener - receives the progress of training about once a second
+   * @return the percent correct of each member over its training
+   * @throws InterruptedException if interrupted while waiting for training
+   */
+  float[] train(final int iterations, final Listener listener) throws InterruptedException {
+    AtomicLong trained = new AtomicLong();
+    AtomicLong correctTotal = new AtomicLong();
+    int threads = Math.min(members.length, Runtime.getRuntime().availableProcessors());
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (NeuralNet member : members) {
+        results.add(executor.submit(() -> {
+          Random random = new Random();
+          int correct = 0, reported = 0;
+          for (int i = 0; i < iterations; i++) {
+            if (member.learn(new Song(random))) {
+              correct++;
+            }
+            if ((i + 1) % REPORT_INTERVAL == 0 || i + 1 == iterations) {
+              trained.addAndGet((i % REPORT_INTERVAL) + 1);
+              correctTotal.addAndGet(correct - reported);
+              reported = correct;
+            }
+          }
+          return correct;
+        }));
+      }
+
+      // Report progress until every member has finished
+      executor.shutdown();
+      while (!executor.awaitTermination(REPORT_PERIOD, TimeUnit.MILLISECONDS)) {
+        listener.progress(trained.get(), correctTotal.get());
+      }
+      listener.progress(trained.get(), correctTotal.get());
+
+      float[] percentCorrect = new float[members.length];
+      for (int m = 0; m < members.length; m++) {
+        try {
+          percentCorrect[m] = (float) results.get(m).get() / (float) iterations * (float) 100.0;
+        } catch (ExecutionException e) {
+          throw new IllegalStateException("Training failed for ensemble member " + m + ".",
+            e.getCause());
+        }
+      }
+      packed = null;
+      return percentCorrect;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+
+  /**
+   * Computes the averaged output values of the ensemble for a batch of songs.
+   * Each member's packed weights are read once for the whole batch.
+   * @param batch - the note frequencies of each song
+   * @return the averaged output values for each song
+   */
+  double[][] predict(final double[][] batch) {
+    if (packed == null) {
+      pack();
+    }
+    double[][] outputs = new double[batch.length][outputNodes];
+    double[] hidden = new double[hiddenNodes];
+    int hiddenThresholds = hiddenNodes * inputNodes;
+    int outputWeights = hiddenThresholds + hiddenNodes;
+    int outputThresholds = outputWeights + outputNodes * hiddenNodes;
+
+    for (int base = 0; base < packed.length; base += stride) {
+      for (int s = 0; s < batch.length; s++) {
+        double[] inputs = batch[s];
+        int inputCount = Math.min(inputs.length, inputNodes);
+
+        // For every hidden node
+        for (int h = 0; h < hiddenNodes; h++) {
+          int row = base + h * inputNodes;
+          double weightedInput = 0.0;
+          for (int i = 0; i < inputCount; i++) {
+            weightedInput += packed[row + i] * inputs[i];
+          }
+          weightedInput += (-1 * packed[base + hiddenThresholds + h]);
+          hidden[h] = NeuralNet.activation(weightedInput);
+        }
+
+        // For every output node
+        double[] output = outputs[s];
+        for (int o = 0; o < outputNodes; o++) {
+          int row = base + outputWeights + o * hiddenNodes;
+          double weightedInput = 0.0;
+          for (int h = 0; h < hiddenNodes; h++) {
+            weightedInput += packed[row + h] * hidden[h];
+          }
+          weightedInput += (-1 * packed[base + outputThresholds + o]);
+          output[o] += NeuralNet.activation(weightedInput);
+        }
+      }
+    }
+
+    for (double[] output : outputs) {
+      for (int o = 0; o < outputNodes; o++) {
+        output[o] /= members.length;
+      }
+    }
+    return outputs;
+  }
+
+
+  /**
+   * Identifies the key of each song in a batch by the ensemble's averaged output.
+   * @param batch - the note frequencies of each song
+   * @return the ensemble's guess for each song
+   */
+  int[] classify(final double[][] batch) {
+    double[][] outputs = predict(batch);
+    int[] guesses = new int[outputs.length];
+    for (int s = 0; s < outputs.length; s++) {
+      int maxValueIndex = 0;
+      for (int o = 1; o < outputNodes; o++) {
+        if (outputs[s][o] > outputs[s][maxValueIndex]) {
+          maxValueIndex = o;
+        }
+      }
+      guesses[s] = maxValueIndex;
+    }
+    return guesses;
+  }
+
+
+  /**
+   * Identifies the key of a single song by the ensemble's averaged output.
+   * @param frequencies - the note frequencies of the song
+   * @return the ensemble's guess
+   */
+  int classify(final double[] frequencies) {
+    return classify(new double[][] {frequencies})[0];
+  }
+
+
+  /**
+   * Copies the weights and thresholds of every member into the packed layout.
+   */
+  private void pack() {
+    int totalNodes = inputNodes + hiddenNodes + outputNodes;
+    int firstOutput = inputNodes + hiddenNodes;
+    double[] parameters = new double[(int) members[0].getParameterCount()];
+    double[] layout = new double[members.length * stride];
+
+    for (int m = 0; m < members.length; m++) {
+      members[m].copyParameters(0, parameters, parameters.length);
+      int index = m * stride;
+
+      // Parameters hold the thresholds followed by the weight from x to y at x * totalNodes + y
+      for (int h = 0; h < hiddenNodes; h++) {
+        for (int i = 0; i < inputNodes; i++) {
+          layout[index++] = parameters[totalNodes + i * totalNodes + inputNodes + h];
+        }
+      }
+      for (int h = 0; h < hiddenNodes; h++) {
+        layout[index++] = parameters[inputNodes + h];
+      }
+      for (int o = 0; o < outputNodes; o++) {
+        for (int h = 0; h < hiddenNodes; h++) {
+          layout[index++] = parameters[totalNodes + (inputNodes + h) * totalNodes + firstOutput + o];
+        }
+      }
+      for (int o = 0; o < outputNodes; o++) {
+        layout[index++] = parameters[firstOutput + o];
+      }
+    }
+    packed = layout;
+  }
+}
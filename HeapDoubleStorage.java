@@ -0,0 +1,49 @@
+/**
+ * Doubles stored in an array on the Java heap.
+ * @since 10/19/26
+ */
+class HeapDoubleStorage extends DoubleStorage {
+
+
+  /** The doubles */
+  private final double[] array;
+
+
+  /**
+   * Constructor.
+   * @param array - the array holding the doubles
+   */
+  HeapDoubleStorage(final double[] array) {
+    this.array = array;
+  }
+
+
+  @Override
+  long size() {
+    return array.length;
+  }
+
+
+  @Override
+  double get(final long index) {
+    return array[(int) index];
+  }
+
+
+  @Override
+  void set(final long index, final double value) {
+    array[(int) index] = value;
+  }
+
+
+  @Override
+  void copyTo(final long from, final double[] target, final int offset, final int length) {
+    System.arraycopy(array, (int) from, target, offset, length);
+  }
+
+
+  @Override
+  void copyFrom(final double[] source, final int offset, final long to, final int length) {
+    System.arraycopy(source, offset, array, (int) to, length);
+  }
+}
@@ -0,0 +1,64 @@
+/**
+ * A change of key (modulation) detected in a stream of notes.
+ * @since 10/19/26
+ */
+class KeyChange {
+
+
+  /** The number of notes streamed when the change was detected */
+  private final long position;
+
+  /** The key before the change, or -1 if no key had been detected yet */
+  private final int previousKey;
+
+  /** The key after the change */
+  private final int key;
+
+
+  /**
+   * Constructor.
+   * @param position - the number of notes streamed when the change was detected
+   * @param previousKey - the key before the change, or -1 if there was none
+   * @param key - the key after the change
+   */
+  KeyChange(final long position, final int previousKey, final int key) {
+    this.position = position;
+    this.previousKey = previousKey;
+    this.key = key;
+  }
+
+
+  /**
+   * Gets the stream position of the change.
+   * @return number of notes streamed when the change was detected
+   */
+  long getPosition() {
+    return this.position;
+  }
+
+
+  /**
+   * Gets the key before the change.
+   * @return previous key, or -1 if this is the first key detected
+   */
+  int getPreviousKey() {
+    return this.previousKey;
+  }
+
+
+  /**
+   * Gets the key after the change.
+   * @return new key
+   */
+  int getKey() {
+    return this.key;
+  }
+
+
+  @Override
+  public String toString() {
+    String from = (previousKey < 0) ? "-    " : Conversions.numbersToLetters(previousKey);
+    return String.format("note %,d: %s -> %s", position, from,
+      Conversions.numbersToLetters(key));
+  }
+}
@@ -1,3 +1,9 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+
 /**
  * Runs the training of the neural network.
  * @author zakrywilson
@@ -22,8 +28,10 @@ class Manager {
   /**
    * Runs the program after validating command line arguments.
    * @param args - command line arguments
+   * @throws IOException if checkpoints cannot be read or written
+   * @throws InterruptedException if interrupted while training an ensemble
    */
-  private static void run(final String[] args) {
+  private static void run(final String[] args) throws IOException, InterruptedException {
     // Create command line options
     CommandLine commandline = new CommandLine();
 
@@ -34,6 +42,13 @@ class Manager {
     verboseOption.addDescription("Runs program in verbose mode.");
     commandline.addOption(verboseOption);
 
+    // Profile option
+    Option profileOption = new Option();
+    profileOption.addShortName("p");
+    profileOption.addLongName("profile");
+    profileOption.addDescription("Times each phase of training.");
+    commandline.addOption(profileOption);
+
     // Reset rate option
     Option resetRateOption = new Option();
     resetRateOption.addShortName("rr");
@@ -52,6 +67,67 @@ class Manager {
     neuralNetOptions.addExpectedArgCount(4);
     commandline.addOption(neuralNetOptions);
 
+    // Sliding window options
+    Option slidingWindowOptions = new Option();
+    slidingWindowOptions.addShortName("sw");
+    slidingWindowOptions.addExpectedArgCount(2);
+    commandline.addOption(slidingWindowOptions);
+
+    // Off-heap option
+    Option offHeapOption = new Option();
+    offHeapOption.addShortName("oh");
+    offHeapOption.addLongName("off-heap");
+    offHeapOption.addDescription("Stores the neural network and dataset off-heap.");
+    commandline.addOption(offHeapOption);
+
+    // Dataset size option
+    Option datasetSizeOption = new Option();
+    datasetSizeOption.addShortName("ds");
+    datasetSizeOption.addExpectedArgCount(1);
+    commandline.addOption(datasetSizeOption);
+
+    // Checkpoint interval option
+    Option checkpointIntervalOption = new Option();
+    checkpointIntervalOption.addShortName("ck");
+    checkpointIntervalOption.addExpectedArgCount(1);
+    commandline.addOption(checkpointIntervalOption);
+
+    // Checkpoint directory option
+    Option checkpointDirectoryOption = new Option();
+    checkpointDirectoryOption.addShortName("cd");
+    checkpointDirectoryOption.addExpectedArgCount(1);
+    commandline.addOption(checkpointDirectoryOption);
+
+    // Resume option
+    Option resumeOption = new Option();
+    resumeOption.addShortName("resume");
+    resumeOption.addDescription("Resumes training from the latest checkpoint.");
+    commandline.addOption(resumeOption);
+
+    // Data-parallel option
+    Option dataParallelOption = new Option();
+    dataParallelOption.addShortName("dp");
+    dataParallelOption.addExpectedArgCount(1);
+    commandline.addOption(dataParallelOption);
+
+    // Sync interval option
+    Option syncIntervalOption = new Option();
+    syncIntervalOption.addShortName("si");
+    syncIntervalOption.addExpectedArgCount(1);
+    commandline.addOption(syncIntervalOption);
+
+    // Parallel worker option (used by the coordinator to start workers)
+    Option parallelWorkerOptions = new Option();
+    parallelWorkerOptions.addShortName("pw");
+    parallelWorkerOptions.addExpectedArgCount(2);
+    commandline.addOption(parallelWorkerOptions);
+
+    // Ensemble option
+    Option ensembleOption = new Option();
+    ensembleOption.addShortName("en");
+    ensembleOption.addExpectedArgCount(1);
+    commandline.addOption(ensembleOption);
+
     // Help option
     commandline.createHelp(getDisplayHelp());
 
@@ -85,11 +161,82 @@ class Manager {
       maxIterations = 10000000;
     }
 
+    // Get dataset size
+    int datasetSize = 0;
+    if (datasetSizeOption.isFound()) {
+      String string = datasetSizeOption.getArgument(0);
+      try {
+        datasetSize = Integer.decode(string);
+      } catch (NumberFormatException nfe) {
+        throw new IllegalArgumentException("Dataset size must be an integer.");
+      }
+      if (datasetSize < 1) {
+        throw new IllegalArgumentException("Dataset size must be positive.");
+      }
+    }
+
+    // Get checkpoint configuration
+    int checkpointInterval = 0;
+    if (checkpointIntervalOption.isFound()) {
+      String string = checkpointIntervalOption.getArgument(0);
+      try {
+        checkpointInterval = Integer.decode(string);
+      } catch (NumberFormatException nfe) {
+        throw new IllegalArgumentException("Checkpoint interval must be an " +
+          "integer.");
+      }
+      if (checkpointInterval < 1) {
+        throw new IllegalArgumentException("Checkpoint interval must be positive.");
+      }
+    }
+    Path checkpointDirectory = Paths.get(checkpointDirectoryOption.isFound()
+      ? checkpointDirectoryOption.getArgument(0) : "checkpoints");
+
+    // Get data-parallel configuration
+    int parallelWorkers = 0;
+    if (dataParallelOption.isFound()) {
+      String string = dataParallelOption.getArgument(0);
+      try {
+        parallelWorkers = Integer.decode(string);
+      } catch (NumberFormatException nfe) {
+        throw new IllegalArgumentException("Number of workers must be an " +
+          "integer.");
+      }
+      if (parallelWorkers < 1) {
+        throw new IllegalArgumentException("Number of workers must be positive.");
+      }
+    }
+    int syncInterval = 1000;
+    if (syncIntervalOption.isFound()) {
+      String string = syncIntervalOption.getArgument(0);
+      try {
+        syncInterval = Integer.decode(string);
+      } catch (NumberFormatException nfe) {
+        throw new IllegalArgumentException("Sync interval must be an integer.");
+      }
+      if (syncInterval < 1) {
+        throw new IllegalArgumentException("Sync interval must be positive.");
+      }
+    }
+
+    // Get ensemble size
+    int ensembleSize = 0;
+    if (ensembleOption.isFound()) {
+      String string = ensembleOption.getArgument(0);
+      try {
+        ensembleSize = Integer.decode(string);
+      } catch (NumberFormatException nfe) {
+        throw new IllegalArgumentException("Ensemble size must be an integer.");
+      }
+      if (ensembleSize < 1) {
+        throw new IllegalArgumentException("Ensemble size must be positive.");
+      }
+    }
+
     // Get neural network configuration
-    NeuralNet net;
+    int inputNodes = 12, hiddenNodes = 12, outputNodes = 12;
+    double learningRate = 0.18;
     if (neuralNetOptions.isFound()) {
-      int inputNodes, hiddenNodes, outputNodes;
-      double learningRate;
       try {
         inputNodes = Integer.decode(neuralNetOptions.getArgument(0));
         hiddenNodes = Integer.decode(neuralNetOptions.getArgument(1));
@@ -103,19 +250,123 @@ class Manager {
       } catch (NumberFormatException nfe) {
         throw new IllegalArgumentException("Learning rate must be a double.");
       }
-      net = new NeuralNet(inputNodes, hiddenNodes, outputNodes, learningRate);
-    } else {
-      net = new NeuralNet(12, 12, 12, 0.18);
+    }
+
+    // Get sliding window configuration
+    int windowSize = 0, detectionInterval = 0;
+    if (slidingWindowOptions.isFound()) {
+      try {
+        windowSize = Integer.decode(slidingWindowOptions.getArgument(0));
+        detectionInterval = Integer.decode(slidingWindowOptions.getArgument(1));
+      } catch (NumberFormatException nfe) {
+        throw new IllegalArgumentException("Sliding window size and interval " +
+          "must be integers.");
+      }
+      if (windowSize < 1 || detectionInterval < 1) {
+        throw new IllegalArgumentException("Sliding window size and interval " +
+          "must be positive.");
+      }
     }
 
     // Run program
     if (commandline.needHelp()) {
       System.out.println(commandline.getHelp());
-    } else if (verboseOption.isFound()) {
-      verboseRun(net, maxIterations);
-    } else {
-      System.out.println(net);
-      normalRun(net, maxIterations, resetRate);
+      return;
+    }
+    if (parallelWorkerOptions.isFound()) {
+      int port, shard;
+      try {
+        port = Integer.decode(parallelWorkerOptions.getArgument(0));
+        shard = Integer.decode(parallelWorkerOptions.getArgument(1));
+      } catch (NumberFormatException nfe) {
+        throw new IllegalArgumentException("Worker port and shard must be " +
+          "integers.");
+      }
+      TrainingWorker.run(port, shard, offHeapOption.isFound());
+      return;
+    }
+    if (dataParallelOption.isFound()) {
+      rejectCombination(dataParallelOption, checkpointIntervalOption,
+        datasetSizeOption, resumeOption, verboseOption, profileOption);
+    }
+    if (ensembleOption.isFound()) {
+      rejectCombination(ensembleOption, checkpointIntervalOption,
+        datasetSizeOption, resumeOption, verboseOption, dataParallelOption,
+        resetRateOption);
+    }
+    if (checkpointInterval > 0 && !resumeOption.isFound()
+      && Checkpointer.hasCheckpoints(checkpointDirectory)) {
+      throw new IllegalArgumentException(checkpointDirectory + " already holds " +
+        "checkpoints; use -resume to continue them or -cd to choose another directory.");
+    }
+    Profiler.setEnabled(profileOption.isFound());
+    try (MemoryArena arena = offHeapOption.isFound() ? MemoryArena.offHeap() : MemoryArena.heap()) {
+      NeuralNet net = new NeuralNet(inputNodes, hiddenNodes, outputNodes, learningRate, arena);
+
+      // Resume from the latest checkpoint
+      Random random = new Random();
+      long datasetSeed = random.nextLong();
+      int completedIterations = 0;
+      if (resumeOption.isFound()) {
+        Checkpoint checkpoint = Checkpointer.loadLatest(checkpointDirectory);
+        if (checkpoint == null) {
+          System.out.println("No valid checkpoint found in " +
+            checkpointDirectory + "; starting from scratch.");
+        } else {
+          if (checkpoint.getDatasetSize() != datasetSize) {
+            throw new IllegalArgumentException((checkpoint.getDatasetSize() == 0)
+              ? "Checkpoint was not trained on a dataset; resume without -ds."
+              : "Checkpoint was trained on a dataset of " +
+                checkpoint.getDatasetSize() + " songs; resume with -ds " +
+                checkpoint.getDatasetSize() + ".");
+          }
+          checkpoint.restore(net);
+          random = checkpoint.getRandom();
+          datasetSeed = checkpoint.getDatasetSeed();
+          completedIterations = checkpoint.getIteration();
+          NeuralNetOutput.resumeFrom(completedIterations);
+          System.out.printf("Resuming from iteration %,d.\n", completedIterations);
+        }
+      }
+      Dataset data = (datasetSize > 0) ? new Dataset(datasetSize, datasetSeed, arena) : null;
+
+      SlidingKeyAnalyzer.Classifier classifier = net::classify;
+      if (parallelWorkers > 0) {
+        System.out.println(net);
+        parallelRun(net, parallelWorkers, syncInterval, maxIterations, arena.isOffHeap());
+      } else if (ensembleSize > 0) {
+        // Give every other member its own seed so they start from different weights
+        Random seeds = new Random();
+        NeuralNet[] members = new NeuralNet[ensembleSize];
+        members[0] = net;
+        for (int m = 1; m < ensembleSize; m++) {
+          members[m] = new NeuralNet(inputNodes, hiddenNodes, outputNodes,
+            learningRate, arena, new Random(seeds.nextLong()));
+        }
+        System.out.println(net);
+        Ensemble ensemble = new Ensemble(members);
+        ensembleRun(ensemble, maxIterations);
+        classifier = ensemble::classify;
+      } else {
+        try (Checkpointer checkpointer = (checkpointInterval > 0)
+          ? new Checkpointer(checkpointDirectory, checkpointInterval, net, data) : null) {
+          if (verboseOption.isFound()) {
+            verboseRun(net, data, random, completedIterations, maxIterations,
+              checkpointer);
+          } else {
+            System.out.println(net);
+            normalRun(net, data, random, completedIterations, maxIterations,
+              resetRate, checkpointer);
+          }
+        }
+      }
+      if (slidingWindowOptions.isFound()) {
+        streamRun(classifier, windowSize, detectionInterval);
+      }
+    }
+    if (Profiler.isEnabled()) {
+      System.out.println();
+      System.out.print(Profiler.report());
     }
   }
 
@@ -123,42 +374,122 @@ class Manager {
   /**
    * Tests neural network with verbose output.
    * @param net - neural network
+   * @param data - dataset to train on, or null to train on new random songs
+   * @param random - random number generator to create songs with
+   * @param start - iterations already completed
    * @param maxIt - specified training iterations
+   * @param checkpointer - saves checkpoints of training, or null
    */
-  private static void verboseRun(NeuralNet net, int maxIt) {
-    for (int iterations = 0; iterations < maxIt; ++iterations) {
-      Song song = new Song();
-      NeuralNetOutput output = net.run(song);
-      output.setCorrectAnswer(song.getKeyOfSong());
+  private static void verboseRun(NeuralNet net, Dataset data, Random random,
+                                 int start, int maxIt, Checkpointer checkpointer) {
+    for (int iterations = start; iterations < maxIt; ++iterations) {
+      NeuralNetOutput output = train(net, data, random, iterations);
+      long time = Profiler.start();
       displayVerbose(output);
+      Profiler.stop(Profiler.Phase.DISPLAY, time);
+      if (checkpointer != null) {
+        checkpointer.checkpoint(iterations + 1, random);
+      }
     }
-    System.out.println("\nFinal test...");
-    for (int key = 0; key < 12; key++) {
-      Song song = new Song(key);
-      NeuralNetOutput output = net.run(song);
-      output.setCorrectAnswer(song.getKeyOfSong());
-      displayResults(output);
+    if (checkpointer != null && start < maxIt) {
+      checkpointer.save(maxIt, random);
     }
+    finalTest(net);
   }
 
 
   /**
    * Test neural network with smaller subsets of the output.
    * @param net - neural network
+   * @param data - dataset to train on, or null to train on new random songs
+   * @param random - random number generator to create songs with
+   * @param start - iterations already completed
    * @param maxIt - specified training iterations
    * @param resetRate - rate at which the data is displayed
+   * @param checkpointer - saves checkpoints of training, or null
    */
-  private static void normalRun(NeuralNet net, int maxIt, int resetRate) {
+  private static void normalRun(NeuralNet net, Dataset data, Random random,
+                                int start, int maxIt, int resetRate,
+                                Checkpointer checkpointer) {
     // Train neural network for x iterations
-    for (int iterations = 0; iterations < maxIt; ++iterations) {
-      Song song = new Song();
-      NeuralNetOutput output = net.run(song);
-      output.setCorrectAnswer(song.getKeyOfSong());
+    for (int iterations = start; iterations < maxIt; ++iterations) {
+      NeuralNetOutput output = train(net, data, random, iterations);
       if ((iterations % resetRate) == 0) {
+        long time = Profiler.start();
         displayPercentages(output);
         output.resetCounters();
+        Profiler.stop(Profiler.Phase.DISPLAY, time);
       }
+      if (checkpointer != null) {
+        checkpointer.checkpoint(iterations + 1, random);
+      }
+    }
+    if (checkpointer != null && start < maxIt) {
+      checkpointer.save(maxIt, random);
+    }
+    finalTest(net);
+  }
+
+
+  /**
+   * Trains neural network across worker processes on this machine.
+   * @param net - neural network
+   * @param workers - number of worker processes
+   * @param syncInterval - iterations each worker trains between syncs
+   * @param maxIt - specified training iterations for each worker
+   * @param offHeap - whether workers store their networks off-heap
+   * @throws IOException if communication with a worker fails
+   */
+  private static void parallelRun(NeuralNet net, int workers, int syncInterval,
+                                  int maxIt, boolean offHeap) throws IOException {
+    try (ParameterServer server = new ParameterServer(net, workers, syncInterval, maxIt)) {
+      server.launchLocalWorkers(offHeap);
+      server.run();
+    }
+    finalTest(net);
+  }
+
+
+  /**
+   * Trains an ensemble of neural networks in parallel, then tests their
+   * averaged output on a batch containing a song in every key.
+   * @param ensemble - ensemble of neural networks
+   * @param maxIt - specified training iterations for each neural network
+   * @throws InterruptedException if interrupted while training
+   */
+  private static void ensembleRun(Ensemble ensemble, int maxIt)
+    throws InterruptedException {
+    System.out.printf("Training %d neural networks...\n", ensemble.size());
+    long total = (long) maxIt * ensemble.size();
+    float[] percentCorrect = ensemble.train(maxIt, (trained, correct) -> {
+      System.out.print("\r");
+      System.out.printf("Iterations: %,d/%,d     Correct: %2.2f%%", trained, total,
+        trained == 0 ? 0.0 : 100.0 * correct / trained);
+    });
+    System.out.println();
+    for (int m = 0; m < percentCorrect.length; m++) {
+      System.out.printf("Network %d     Correct: %2.2f%%\n", m + 1, percentCorrect[m]);
     }
+
+    System.out.println("\nFinal test...");
+    double[][] batch = new double[12][];
+    for (int key = 0; key < 12; key++) {
+      batch[key] = new Song(key).getFrequencies();
+    }
+    int[] guesses = ensemble.classify(batch);
+    for (int key = 0; key < 12; key++) {
+      NeuralNetOutput output = new NeuralNetOutput(guesses[key], 0.0);
+      output.setCorrectAnswer(key);
+      displayResults(output);
+    }
+  }
+
+
+  /**
+   * Tests the trained neural network on a song in every key.
+   * @param net - neural network
+   */
+  private static void finalTest(NeuralNet net) {
     System.out.println("\nFinal test...");
     for (int key = 0; key < 12; key++) {
       Song song = new Song(key);
@@ -169,6 +500,56 @@ class Manager {
   }
 
 
+  /**
+   * Trains the neural network for one iteration.
+   * @param net - neural network
+   * @param data - dataset to train on, or null to train on a new random song
+   * @param random - random number generator to create the song with
+   * @param iteration - the current iteration, used to pick a sample from data
+   * @return output results from the neural net
+   */
+  private static NeuralNetOutput train(NeuralNet net, Dataset data, Random random,
+                                       int iteration) {
+    NeuralNetOutput output;
+    if (data == null) {
+      long time = Profiler.start();
+      Song song = new Song(random);
+      Profiler.stop(Profiler.Phase.SONG_GENERATION, time);
+      output = net.run(song);
+      output.setCorrectAnswer(song.getKeyOfSong());
+    } else {
+      int sample = iteration % data.size();
+      output = net.run(data, sample);
+      output.setCorrectAnswer(data.getKey(sample));
+    }
+    return output;
+  }
+
+
+  /**
+   * Streams a melody that modulates between random keys through a sliding
+   * window and displays each key change the trained classifier detects.
+   * @param classifier - trained neural network or ensemble
+   * @param windowSize - number of notes in the sliding window
+   * @param interval - number of notes between key detections
+   */
+  private static void streamRun(SlidingKeyAnalyzer.Classifier classifier, int windowSize,
+                                int interval) {
+    System.out.println("\nStreaming test...");
+    SlidingKeyAnalyzer analyzer = new SlidingKeyAnalyzer(classifier, windowSize,
+      interval, change -> System.out.println("detected " + change));
+    Random random = new Random();
+    for (int section = 0; section < 8; section++) {
+      int key = random.nextInt(12);
+      System.out.printf("note %,d: modulating to %s\n", analyzer.getPosition(),
+        Conversions.numbersToLetters(key));
+      for (int song = 0; song < 4; song++) {
+        analyzer.accept(new Song(key).getNotes());
+      }
+    }
+  }
+
+
   /**
    * Displays results: percent correct, how iteration number, etc.
    */
@@ -211,6 +592,21 @@ class Manager {
   }
 
 
+  /**
+   * Throws if any option that a training mode does not support was given.
+   * @param mode - option selecting the training mode
+   * @param unsupported - options the training mode ignores
+   */
+  private static void rejectCombination(Option mode, Option... unsupported) {
+    for (Option option : unsupported) {
+      if (option.isFound()) {
+        throw new IllegalArgumentException(mode.getShortName() +
+          " cannot be combined with " + option.getShortName() + ".");
+      }
+    }
+  }
+
+
   /**
    * Displays help information general purpose and commandline arguments.
    * @return help instructions
@@ -225,6 +621,8 @@ class Manager {
     string += "Arguments:\n";
     string += "   -h  or  --help    \t Help\n";
     string += "   -v  or  --verbose \t Verbose output\n";
+    string += "   -p  or  --profile \t Time each phase of training and print " +
+      "a report at the end of the run\n";
     string += "   -nn [I][H][O][R]  \t Configure neural network " +
       "characteristics where I is the number of input nodes, H is the number " +
       "of hidden nodes, O is the number of output nodes, and R is the " +
@@ -232,6 +630,25 @@ class Manager {
     string += "   -rr [X]           \t Set the reset rate to X for normal run" +
       " (non-verbose)\n";
     string += "   -mi [N]           \t Set the max training iterations to N\n";
+    string += "   -oh or  --off-heap\t Store the neural network and dataset " +
+      "outside the Java heap\n";
+    string += "   -ds [N]           \t Train on a fixed dataset of N songs " +
+      "instead of a new song every iteration\n";
+    string += "   -ck [N]           \t Save a checkpoint every N training " +
+      "iterations\n";
+    string += "   -cd [DIR]         \t Set the checkpoint directory to DIR " +
+      "(default: checkpoints)\n";
+    string += "   -resume           \t Resume training from the latest valid " +
+      "checkpoint\n";
+    string += "   -dp [N]           \t Train with N worker processes that " +
+      "average their changes to the neural network\n";
+    string += "   -si [N]           \t Set the number of iterations workers " +
+      "train between syncs to N (default: 1000)\n";
+    string += "   -en [M]           \t Train an ensemble of M neural networks " +
+      "in parallel and average their outputs\n";
+    string += "   -sw [W][K]        \t After training, stream a modulating " +
+      "melody through a sliding window of W notes and detect its key every K " +
+      "notes\n";
     string += "\n";
     return string;
   }
@@ -0,0 +1,169 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Allocates the storage used by neural networks and datasets.
+ * A heap arena hands out storage backed by ordinary arrays. An off-heap arena
+ * hands out direct buffers outside the Java heap and frees them all as soon as
+ * the arena is closed, instead of waiting for the garbage collector. Storage
+ * must not be used after its arena has been closed.
+ * <p>
+ * The JVM caps the total size of direct buffers at -XX:MaxDirectMemorySize,
+ * which defaults to the maximum heap size. Raise it to hold off-heap storage
+ * larger than the heap.
+ * @since 10/19/26
+ */
+class MemoryArena implements AutoCloseable {
+
+
+  /** The largest array the JVM can allocate */
+  static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+  /** Whether buffers are allocated outside the Java heap */
+  private final boolean offHeap;
+
+  /** The direct buffers allocated by this arena */
+  private final List<ByteBuffer> buffers = new ArrayList<>();
+
+  /** The total number of bytes allocated by this arena */
+  private long allocatedBytes = 0;
+
+  /** Whether the arena is still open */
+  private volatile boolean alive = true;
+
+  /** The unsafe instance used to free direct buffers, or null if unavailable */
+  private static final Object unsafe;
+
+  /** The method that frees a direct buffer, or null if unavailable */
+  private static final Method invokeCleaner;
+
+  static {
+    Object instance = null;
+    Method method = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      instance = field.get(null);
+      method = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Direct buffers will be freed by the garbage collector instead
+      instance = null;
+      method = null;
+    }
+    unsafe = instance;
+    invokeCleaner = method;
+  }
+
+
+  /**
+   * Constructor.
+   * @param offHeap - whether to allocate outside the Java heap
+   */
+  private MemoryArena(final boolean offHeap) {
+    this.offHeap = offHeap;
+  }
+
+
+  /**
+   * Creates an arena that allocates on the Java heap.
+   * @return heap arena
+   */
+  static MemoryArena heap() {
+    return new MemoryArena(false);
+  }
+
+
+  /**
+   * Creates an arena that allocates outside the Java heap.
+   * @return off-heap arena
+   */
+  static MemoryArena offHeap() {
+    return new MemoryArena(true);
+  }
+
+
+  /**
+   * Allocates zeroed storage for doubles.
+   * @param count - the number of doubles
+   * @return the new storage
+   */
+  synchronized DoubleStorage allocate(final long count) {
+    ensureAlive();
+    if (count < 0) {
+      throw new IllegalArgumentException("Storage size must not be negative: " + count);
+    }
+    if (!offHeap) {
+      if (count > MAX_ARRAY_LENGTH) {
+        throw new IllegalArgumentException(String.format("Cannot store %,d doubles " +
+          "on the heap; use off-heap storage instead.", count));
+      }
+      allocatedBytes += count * Double.BYTES;
+      return new HeapDoubleStorage(new double[(int) count]);
+    }
+    DoubleStorage storage = OffHeapDoubleStorage.allocate(count, buffers);
+    allocatedBytes += count * Double.BYTES;
+    return storage;
+  }
+
+
+  /**
+   * Returns whether buffers are allocated outside the Java heap.
+   * @return true for an off-heap arena
+   */
+  boolean isOffHeap() {
+    return this.offHeap;
+  }
+
+
+  /**
+   * Gets the total number of bytes allocated.
+   * @return allocated bytes
+   */
+  synchronized long getAllocatedBytes() {
+    return this.allocatedBytes;
+  }
+
+
+  /**
+   * Throws if the arena has been closed.
+   */
+  void ensureAlive() {
+    if (!alive) {
+      throw new IllegalStateException("Memory arena has already been closed.");
+    }
+  }
+
+
+  /**
+   * Closes the arena and frees all of its off-heap buffers.
+   */
+  @Override
+  public synchronized void close() {
+    if (!alive) {
+      return;
+    }
+    alive = false;
+    if (invokeCleaner != null) {
+      for (ByteBuffer buffer : buffers) {
+        try {
+          invokeCleaner.invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException e) {
+          // Leave the buffer to the garbage collector
+        }
+      }
+    }
+    buffers.clear();
+  }
+
+
+  @Override
+  public String toString() {
+    return String.format("%s arena: %,d bytes", offHeap ? "Off-heap" : "Heap",
+      getAllocatedBytes());
+  }
+}
@@ -1,4 +1,3 @@
-import java.util.Arrays;
 import java.util.Random;
 
 
@@ -28,18 +27,26 @@ class NeuralNet {
   private double learningRate;
 
   /** The values array used for containing all nodes in neural network */
-  private double[] values;
+  private DoubleStorage values;
 
   /** The thresholds of the neural network's nodes */
-  private double[] thresholds;
+  private DoubleStorage thresholds;
 
-  /** The weights of the neural network's nodes */
-  private double[][] weights;
+  /**
+   * The weights of the neural network's nodes, where the weight from x to y is
+   * at x * totalNodes + y. Kernels step through a column by adding totalNodes
+   * to a long index rather than multiplying, which keeps the heap path as fast
+   * as plain arrays.
+   */
+  private DoubleStorage weights;
+
+  /** The arena the network's storage is allocated from */
+  private final MemoryArena arena;
 
   /**
    * Random number generator
    */
-  private static Random random;
+  private final Random random;
 
   /** Constant mathematical value e */
   private static final double E = 2.71828;
@@ -52,6 +59,37 @@ class NeuralNet {
    * @param outputNodes - number of nodes in output layer
    */
   NeuralNet(final int inputNodes, final int hiddenNodes, final int outputNodes, final double learningRate) {
+    this(inputNodes, hiddenNodes, outputNodes, learningRate, MemoryArena.heap());
+  }
+
+
+  /**
+   * Constructor.
+   * @param inputNodes - number of nodes in input layer
+   * @param hiddenNodes - number of nodes in hidden layer
+   * @param outputNodes - number of nodes in output layer
+   * @param learningRate - the neural network's learning rate
+   * @param arena - the arena to allocate values, thresholds and weights from
+   */
+  NeuralNet(final int inputNodes, final int hiddenNodes, final int outputNodes, final double learningRate,
+            final MemoryArena arena) {
+    this(inputNodes, hiddenNodes, outputNodes, learningRate, arena, new Random());
+  }
+
+
+  /**
+   * Constructor.
+   * @param inputNodes - number of nodes in input layer
+   * @param hiddenNodes - number of nodes in hidden layer
+   * @param outputNodes - number of nodes in output layer
+   * @param learningRate - the neural network's learning rate
+   * @param arena - the arena to allocate values, thresholds and weights from
+   * @param random - the random number generator to initialize thresholds and weights with
+   */
+  NeuralNet(final int inputNodes, final int hiddenNodes, final int outputNodes, final double learningRate,
+            final MemoryArena arena, final Random random) {
+    this.arena = arena;
+    this.random = random;
     this.inputNodes = inputNodes;
     this.hiddenNodes = hiddenNodes;
     this.outputNodes = outputNodes;
@@ -67,14 +105,168 @@ class NeuralNet {
    */
   NeuralNetOutput run(final Song song) {
 
-    values = Arrays.copyOf(song.getFrequencies(), totalNodes);
+    long time = Profiler.start();
+    loadInputs(song.getFrequencies());
+    time = Profiler.stop(Profiler.Phase.FREQUENCIES, time);
+    return train((int) song.getKeyOfSong(), time);
+  }
+
 
-    // run training for the network
+  /**
+   * Runs through one iteration on a sample from a dataset.
+   * @param data - the dataset to train on
+   * @param sample - the index of the sample in the dataset
+   * @return output - the output containing all relevant results
+   */
+  NeuralNetOutput run(final Dataset data, final int sample) {
+
+    long time = Profiler.start();
+    arena.ensureAlive();
+    clearInputs();
+    data.copyFrequencies(sample, values, inputNodes);
+    time = Profiler.stop(Profiler.Phase.FREQUENCIES, time);
+    return train(data.getKey(sample), time);
+  }
+
+
+  /**
+   * Trains on a song without recording an output.
+   * Unlike {@link #run(Song)}, this touches no shared counters, so separate
+   * networks can be trained by separate threads at the same time.
+   * @param song - a new song to train on
+   * @return true if the neural network's guess was correct
+   */
+  boolean learn(final Song song) {
+
+    long time = Profiler.start();
+    int key = (int) song.getKeyOfSong();
+    loadInputs(song.getFrequencies());
+    time = Profiler.stop(Profiler.Phase.FREQUENCIES, time);
+    backPropagate(key, time);
+    time = Profiler.start();
+    boolean correct = interpretResults() == key;
+    Profiler.stop(Profiler.Phase.INTERPRETATION, time);
+    return correct;
+  }
+
+
+  /**
+   * Identifies the key of a set of note frequencies without training.
+   * @param frequencies - the number of occurrences of each note
+   * @return neural network's guess
+   */
+  int classify(final double[] frequencies) {
+    loadInputs(frequencies);
     activateNetwork();
+    return (int) interpretResults();
+  }
 
-    double error = updateWeights(song.getExpectedOutput());
-    double guess = interpretResults();
-    return new NeuralNetOutput(guess, error);
+
+  /**
+   * Gets the number of trainable parameters: every threshold and weight.
+   * @return parameter count
+   */
+  long getParameterCount() {
+    return totalNodes + (long) totalNodes * totalNodes;
+  }
+
+
+  /**
+   * Copies all thresholds followed by all weights into storage.
+   * @param target - storage of at least {@link #getParameterCount()} doubles
+   */
+  void copyParameters(final DoubleStorage target) {
+    arena.ensureAlive();
+    thresholds.copyTo(0, target, 0, totalNodes);
+    weights.copyTo(0, target, totalNodes, weights.size());
+  }
+
+
+  /**
+   * Copies a run of parameters into an array, where thresholds come before
+   * weights as in {@link #copyParameters(DoubleStorage)}. Copying a run at a
+   * time lets networks with more parameters than fit in an array be copied.
+   * @param first - the index of the first parameter to copy
+   * @param target - the array to copy into
+   * @param length - the number of parameters to copy
+   */
+  void copyParameters(final long first, final double[] target, final int length) {
+    arena.ensureAlive();
+    int offset = 0;
+    if (first < totalNodes) {
+      int count = (int) Math.min(length, totalNodes - first);
+      thresholds.copyTo(first, target, 0, count);
+      offset = count;
+    }
+    if (offset < length) {
+      weights.copyTo(first + offset - totalNodes, target, offset, length - offset);
+    }
+  }
+
+
+  /**
+   * Replaces a run of parameters, where thresholds come before weights as in
+   * {@link #copyParameters(DoubleStorage)}.
+   * @param first - the index of the first parameter to replace
+   * @param source - the new values
+   * @param length - the number of parameters to replace
+   */
+  void setParameters(final long first, final double[] source, final int length) {
+    arena.ensureAlive();
+    int offset = 0;
+    if (first < totalNodes) {
+      int count = (int) Math.min(length, totalNodes - first);
+      thresholds.copyFrom(source, 0, first, count);
+      offset = count;
+    }
+    if (offset < length) {
+      weights.copyFrom(source, offset, first + offset - totalNodes, length - offset);
+    }
+  }
+
+
+  /**
+   * Gets the arena the network's storage is allocated from.
+   * @return memory arena
+   */
+  MemoryArena getArena() {
+    return this.arena;
+  }
+
+
+  /**
+   * Gets the number of input nodes.
+   * @return input nodes
+   */
+  int getInputNodes() {
+    return this.inputNodes;
+  }
+
+
+  /**
+   * Gets the number of hidden nodes.
+   * @return hidden nodes
+   */
+  int getHiddenNodes() {
+    return this.hiddenNodes;
+  }
+
+
+  /**
+   * Gets the number of output nodes.
+   * @return output nodes
+   */
+  int getOutputNodes() {
+    return this.outputNodes;
+  }
+
+
+  /**
+   * Gets the learning rate.
+   * @return learning rate
+   */
+  double getLearningRate() {
+    return this.learningRate;
   }
 
 
@@ -82,22 +274,85 @@ class NeuralNet {
    * Initializes neural network characteristics: weights, thresholds, etc.
    */
   private void init() {
-    totalNodes = inputNodes + hiddenNodes + outputNodes;
-    random = new Random(System.currentTimeMillis() * System.currentTimeMillis());
-    weights = new double[totalNodes][totalNodes];
-    thresholds = new double[totalNodes];
+    if (inputNodes < 1 || hiddenNodes < 1 || outputNodes < 1) {
+      throw new IllegalArgumentException("Every layer needs at least one node.");
+    }
+    long nodes = (long) inputNodes + hiddenNodes + outputNodes;
+    if (nodes > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many nodes in the neural network: " + nodes);
+    }
+    totalNodes = (int) nodes;
+    values = arena.allocate(totalNodes);
+    weights = arena.allocate(nodes * nodes);
+    thresholds = arena.allocate(totalNodes);
     connectNodes();
   }
 
 
+  /**
+   * Trains the network on the inputs currently loaded into the values array.
+   * @param key - the key signature of the inputs
+   * @param time - the time the inputs finished loading, for profiling
+   * @return output - the output containing all relevant results
+   */
+  private NeuralNetOutput train(final int key, long time) {
+
+    double error = backPropagate(key, time);
+    time = Profiler.start();
+    double guess = interpretResults();
+    Profiler.stop(Profiler.Phase.INTERPRETATION, time);
+    return new NeuralNetOutput(guess, error);
+  }
+
+
+  /**
+   * Activates the network and updates its weights for the loaded inputs.
+   * @param key - the key signature of the inputs
+   * @param time - the time the inputs finished loading, for profiling
+   * @return sum of squared errors
+   */
+  private double backPropagate(final int key, long time) {
+
+    // run training for the network
+    activateNetwork();
+    time = Profiler.stop(Profiler.Phase.ACTIVATION, time);
+
+    double error = updateWeights(key);
+    Profiler.stop(Profiler.Phase.WEIGHT_UPDATE, time);
+    return error;
+  }
+
+
+  /**
+   * Loads note frequencies into the input nodes.
+   * @param frequencies - the number of occurrences of each note
+   */
+  private void loadInputs(final double[] frequencies) {
+    arena.ensureAlive();
+    clearInputs();
+    values.copyFrom(frequencies, 0, 0, Math.min(frequencies.length, inputNodes));
+  }
+
+
+  /**
+   * Sets every input node to 0.
+   */
+  private void clearInputs() {
+    for (int i = 0; i < inputNodes; i++) {
+      values.set(i, 0.0);
+    }
+  }
+
+
   /**
    * Sets random default values for the network to iterate over.
    */
   private void connectNodes() {
     for (int x = 0; x < totalNodes; x++) {
-      thresholds[x] = getRandom() / (double) getRandom();
+      thresholds.set(x, getRandom() / (double) getRandom());
+      long row = (long) x * totalNodes;
       for (int y = 0; y < totalNodes; y++) {
-        weights[x][y] = (getRandom() % 200) / 100.0;
+        weights.set(row + y, (getRandom() % 200) / 100.0);
       }
     }
   }
@@ -113,13 +368,14 @@ class NeuralNet {
       double weightedInput = 0.0;
 
       // Add up the weighted inputs
-      for (int i = 0; i < inputNodes; i++) {
-        weightedInput += weights[i][h] * values[i];
+      long inputToHidden = h;
+      for (int i = 0; i < inputNodes; i++, inputToHidden += totalNodes) {
+        weightedInput += weights.get(inputToHidden) * values.get(i);
       }
 
       // Handle the thresholds
-      weightedInput += (-1 * thresholds[h]);
-      values[h] = 1.0 / (1.0 + Math.pow(E, -weightedInput));
+      weightedInput += (-1 * thresholds.get(h));
+      values.set(h, activation(weightedInput));
     }
 
     // For every output node
@@ -127,44 +383,62 @@ class NeuralNet {
       double weightedInput = 0.0;
 
       // Add up the weighted inputs
-      for (int h = inputNodes; h < inputNodes + hiddenNodes; h++) {
-        weightedInput += weights[h][o] * values[h];
+      long hiddenToOutput = (long) inputNodes * totalNodes + o;
+      for (int h = inputNodes; h < inputNodes + hiddenNodes; h++, hiddenToOutput += totalNodes) {
+        weightedInput += weights.get(hiddenToOutput) * values.get(h);
       }
-      weightedInput += (-1 * thresholds[o]);
-      values[o] = 1.0 / (1.0 + Math.pow(E, -weightedInput));
+      weightedInput += (-1 * thresholds.get(o));
+      values.set(o, activation(weightedInput));
     }
   }
 
 
+  /**
+   * The activation function of every hidden and output node.
+   * @param weightedInput - the weighted sum of a node's inputs less its threshold
+   * @return the node's value
+   */
+  static double activation(final double weightedInput) {
+    return 1.0 / (1.0 + Math.pow(E, -weightedInput));
+  }
+
+
   /**
    * Update weights and get results.
-   * @param expectedResults - the correct answer for the neural net's output nodes
-   * @return results array (where index 0 contains output and index 1 contains sum of squared errors)
+   * The correct answer is 1 for the output node of the key and 0 for all others.
+   * @param key - the correct answer (key signature)
+   * @return sum of squared errors
    */
-  private double updateWeights(final double[] expectedResults) {
+  private double updateWeights(final int key) {
 
     double error = 0.0;
 
     for (int o = inputNodes + hiddenNodes; o < totalNodes; o++) {
 
-      double absoluteError = expectedResults[o - inputNodes - hiddenNodes] - values[o];
+      double expectedResult = (o - inputNodes - hiddenNodes == key) ? 1.0 : 0.0;
+      double value = values.get(o);
+      double absoluteError = expectedResult - value;
       error += (Math.pow(absoluteError, 2)) / inputNodes;
-      double outputErrorGradient = values[o] * (1.0 - values[o]) * absoluteError;
+      double outputErrorGradient = value * (1.0 - value) * absoluteError;
 
       for (int h = inputNodes; h < inputNodes + hiddenNodes; h++) {
-        double delta = learningRate * values[h] * outputErrorGradient;
-        weights[h][o] += delta;
-        double hiddenErrorGradient = values[h] * (1 - values[h]) * outputErrorGradient * weights[h][o];
-        for (int i = 0; i < inputNodes; i++) {
-          double _delta = learningRate * values[i] * hiddenErrorGradient;
-          weights[i][h] += _delta;
+        double hiddenValue = values.get(h);
+        double delta = learningRate * hiddenValue * outputErrorGradient;
+        long hiddenToOutput = (long) h * totalNodes + o;
+        double weight = weights.get(hiddenToOutput) + delta;
+        weights.set(hiddenToOutput, weight);
+        double hiddenErrorGradient = hiddenValue * (1 - hiddenValue) * outputErrorGradient * weight;
+        long inputToHidden = h;
+        for (int i = 0; i < inputNodes; i++, inputToHidden += totalNodes) {
+          double _delta = learningRate * values.get(i) * hiddenErrorGradient;
+          weights.set(inputToHidden, weights.get(inputToHidden) + _delta);
         }
 
         double thresholdData = learningRate * -1 * hiddenErrorGradient;
-        thresholds[h] += thresholdData;
+        thresholds.set(h, thresholds.get(h) + thresholdData);
       }
       double delta = learningRate * -1 * outputErrorGradient;
-      thresholds[o] += delta;
+      thresholds.set(o, thresholds.get(o) + delta);
     }
     return error;
   }
@@ -175,12 +449,11 @@ class NeuralNet {
    * @return neural network's guess
    */
   private double interpretResults() {
-    double[] output = Arrays.copyOfRange(values, inputNodes + hiddenNodes,
-      values.length);
+    int firstOutput = inputNodes + hiddenNodes;
     int maxValueIndex = 0;
-    for (int i = 1; i < output.length; i++) {
-      double newValue = output[i];
-      if ((newValue > output[maxValueIndex])) {
+    for (int i = 1; i < outputNodes; i++) {
+      double newValue = values.get(firstOutput + i);
+      if ((newValue > values.get(firstOutput + maxValueIndex))) {
         maxValueIndex = i;
       }
     }
@@ -204,6 +477,7 @@ class NeuralNet {
     string += "\tHidden nodes: " + this.hiddenNodes + "\n";
     string += "\tOutput nodes: " + this.outputNodes + "\n";
     string += "\tLearning rate: " + this.learningRate + "\n";
+    string += "\tStorage: " + (arena.isOffHeap() ? "off-heap" : "heap") + "\n";
     string += "--------------------------------------------------------------";
     return string;
   }
@@ -103,6 +103,15 @@ class NeuralNetOutput {
   }
 
 
+  /**
+   * Continues the accumulative iteration count from an earlier run.
+   * @param completedIterations - the iterations completed before this run
+   */
+  static void resumeFrom(final int completedIterations) {
+    accumulativeIterations = completedIterations - 1;
+  }
+
+
   /**
    * Reset iteration count and correct count.
    */
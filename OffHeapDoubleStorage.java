@@ -0,0 +1,90 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.List;
+
+
+/**
+ * Doubles stored outside the Java heap in direct buffers.
+ * The doubles are split into chunks of at most {@link #CHUNK_SIZE} doubles,
+ * so the storage is not limited to the size of a single buffer.
+ * <p>
+ * Only {@link #allocate} creates this class, and only an off-heap
+ * {@link MemoryArena} calls it, so a run on the heap never loads it.
+ * @since 10/19/26
+ */
+class OffHeapDoubleStorage extends DoubleStorage {
+
+
+  /** log2 of the number of doubles in each chunk (1 GiB) */
+  static final int CHUNK_SHIFT = 27;
+
+  /** The number of doubles in each chunk */
+  static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+  /** Masks an index down to its position within a chunk */
+  private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+  /** The number of doubles stored */
+  private final long size;
+
+  /** The chunks, each full but the last */
+  private final DoubleBuffer[] chunks;
+
+
+  /**
+   * Allocates zeroed direct buffers for doubles.
+   * Returning the superclass keeps this class out of the bytecode verifier's
+   * checks of the caller, so the caller can be loaded without loading this class.
+   * @param count - the number of doubles
+   * @param buffers - receives the allocated buffers so they can be freed later
+   * @return the new storage
+   */
+  static DoubleStorage allocate(final long count, final List<ByteBuffer> buffers) {
+    int chunkCount = (int) ((count + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+    DoubleBuffer[] chunks = new DoubleBuffer[chunkCount];
+    for (int c = 0; c < chunkCount; c++) {
+      long doubles = Math.min(CHUNK_SIZE, count - ((long) c << CHUNK_SHIFT));
+      ByteBuffer buffer;
+      try {
+        buffer = ByteBuffer.allocateDirect((int) doubles * Double.BYTES);
+      } catch (OutOfMemoryError e) {
+        throw new IllegalStateException(String.format("Could not allocate %,d bytes " +
+          "off-heap; raise the limit with -XX:MaxDirectMemorySize.", count * Double.BYTES), e);
+      }
+      buffer.order(ByteOrder.nativeOrder());
+      buffers.add(buffer);
+      chunks[c] = buffer.asDoubleBuffer();
+    }
+    return new OffHeapDoubleStorage(chunks, count);
+  }
+
+
+  /**
+   * Constructor.
+   * @param chunks - the buffers holding the doubles, each full but the last
+   * @param size - the total number of doubles
+   */
+  private OffHeapDoubleStorage(final DoubleBuffer[] chunks, final long size) {
+    this.chunks = chunks;
+    this.size = size;
+  }
+
+
+  @Override
+  long size() {
+    return this.size;
+  }
+
+
+  @Override
+  double get(final long index) {
+    return chunks[(int) (index >>> CHUNK_SHIFT)].get((int) (index & CHUNK_MASK));
+  }
+
+
+  @Override
+  void set(final long index, final double value) {
+    chunks[(int) (index >>> CHUNK_SHIFT)].put((int) (index & CHUNK_MASK), value);
+  }
+}
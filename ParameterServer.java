@@ -0,0 +1,254 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Coordinates training of a neural network across several worker processes.
+ * Every worker trains its own copy of the network on its own shard of songs.
+ * After each sync interval the workers send back how much their parameters
+ * changed, the coordinator averages those changes into the shared network
+ * (federated averaging) and sends the result out for the next round.
+ * Workers connect over the loopback interface; see {@link TrainingWorker}.
+ * Parameters are sent and averaged a chunk at a time, so neither side needs
+ * a copy of the whole network on the heap.
+ * @since 10/19/26
+ */
+class ParameterServer implements AutoCloseable {
+
+
+  /**
+   * How long to wait for a worker to connect and send its shard, or for a
+   * worker process to exit, in milliseconds. Training rounds have no timeout
+   * since a round can take arbitrarily long.
+   */
+  static final int TIMEOUT = 60000;
+
+  /** The number of parameters sent or received at a time */
+  static final int CHUNK = 8192;
+
+  /** The shared neural network */
+  private final NeuralNet net;
+
+  /** The number of workers */
+  private final int workers;
+
+  /** The number of iterations each worker trains between syncs */
+  private final int syncInterval;
+
+  /** The number of iterations each worker trains in total */
+  private final int iterations;
+
+  /** The socket workers connect to */
+  private final ServerSocket serverSocket;
+
+  /** The connections to the workers */
+  private final List<Socket> sockets = new ArrayList<>();
+
+  /** The worker processes started by this coordinator */
+  private final List<Process> processes = new ArrayList<>();
+
+
+  /**
+   * Constructor.
+   * Opens a socket on the loopback interface for workers to connect to.
+   * @param net - the shared neural network
+   * @param workers - the number of workers
+   * @param syncInterval - the number of iterations each worker trains between syncs
+   * @param iterations - the number of iterations each worker trains in total
+   * @throws IOException if the socket cannot be opened
+   */
+  ParameterServer(final NeuralNet net, final int workers, final int syncInterval,
+                  final int iterations) throws IOException {
+    if (workers < 1) {
+      throw new IllegalArgumentException("Number of workers must be positive: " + workers);
+    }
+    if (syncInterval < 1) {
+      throw new IllegalArgumentException("Sync interval must be positive: " + syncInterval);
+    }
+    this.net = net;
+    this.workers = workers;
+    this.syncInterval = syncInterval;
+    this.iterations = iterations;
+    this.serverSocket = new ServerSocket(0, workers, InetAddress.getLoopbackAddress());
+    this.serverSocket.setSoTimeout(TIMEOUT);
+  }
+
+
+  /**
+   * Gets the port workers connect to.
+   * @return port number
+   */
+  int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+
+  /**
+   * Starts every worker as a separate JVM on this machine.
+   * Workers get the same JVM options as this one, such as -Xmx and
+   * -XX:MaxDirectMemorySize, so they can hold the same size of network.
+   * @param offHeap - whether workers store their networks off-heap
+   * @throws IOException if a worker cannot be started
+   */
+  void launchLocalWorkers(final boolean offHeap) throws IOException {
+    String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    String classpath = System.getProperty("java.class.path");
+    for (int shard = 0; shard < workers; shard++) {
+      List<String> command = new ArrayList<>();
+      command.add(java);
+      command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+      command.addAll(List.of("-cp", classpath, "Manager",
+        "-pw", String.valueOf(getPort()), String.valueOf(shard)));
+      if (offHeap) {
+        command.add("-oh");
+      }
+      ProcessBuilder builder = new ProcessBuilder(command);
+      builder.inheritIO();
+      processes.add(builder.start());
+    }
+  }
+
+
+  /**
+   * Trains the shared network with the workers until every worker has trained
+   * for all of its iterations.
+   * @throws IOException if communication with a worker fails
+   */
+  void run() throws IOException {
+    List<DataInputStream> inputs = new ArrayList<>();
+    List<DataOutputStream> outputs = new ArrayList<>();
+    long seed = System.nanoTime();
+
+    // Wait for every worker and send it the network configuration
+    for (int i = 0; i < workers; i++) {
+      Socket socket = serverSocket.accept();
+      socket.setSoTimeout(TIMEOUT);
+      socket.setTcpNoDelay(true);
+      sockets.add(socket);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      int shard = in.readInt();
+      socket.setSoTimeout(0);
+      out.writeInt(net.getInputNodes());
+      out.writeInt(net.getHiddenNodes());
+      out.writeInt(net.getOutputNodes());
+      out.writeDouble(net.getLearningRate());
+      out.writeInt(syncInterval);
+      out.writeInt(iterations);
+      out.writeLong(seed + shard);
+      inputs.add(in);
+      outputs.add(out);
+    }
+
+    long parameterCount = net.getParameterCount();
+    double[] chunk = new double[CHUNK];
+    double[] deltas = new double[CHUNK];
+    int rounds = (iterations + syncInterval - 1) / syncInterval;
+    for (int round = 0; round < rounds; round++) {
+
+      // Send the shared parameters to every worker so they train in parallel
+      for (DataOutputStream out : outputs) {
+        for (long p = 0; p < parameterCount; p += CHUNK) {
+          int length = (int) Math.min(CHUNK, parameterCount - p);
+          net.copyParameters(p, chunk, length);
+          writeDoubles(out, chunk, length);
+        }
+        out.flush();
+      }
+
+      // Average the changes made by every worker into the shared network
+      long trained = 0, correct = 0;
+      for (DataInputStream in : inputs) {
+        trained += in.readInt();
+        correct += in.readInt();
+        for (long p = 0; p < parameterCount; p += CHUNK) {
+          int length = (int) Math.min(CHUNK, parameterCount - p);
+          readDoubles(in, deltas, length);
+          net.copyParameters(p, chunk, length);
+          for (int i = 0; i < length; i++) {
+            chunk[i] += deltas[i] / workers;
+          }
+          net.setParameters(p, chunk, length);
+        }
+      }
+
+      System.out.print("\r");
+      System.out.printf("Round: %,d/%,d     Iterations: %,d     Correct: %2.2f%%",
+        round + 1, rounds, Math.min((long) (round + 1) * syncInterval, iterations) * workers,
+        trained == 0 ? 0.0 : 100.0 * correct / trained);
+    }
+    System.out.println();
+  }
+
+
+  /**
+   * Closes the connections and waits for the worker processes to exit,
+   * killing any that are still running after the timeout.
+   */
+  @Override
+  public void close() {
+    for (Socket socket : sockets) {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Already closed
+      }
+    }
+    try {
+      serverSocket.close();
+    } catch (IOException e) {
+      // Already closed
+    }
+    for (Process process : processes) {
+      try {
+        if (!process.waitFor(TIMEOUT, TimeUnit.MILLISECONDS)) {
+          process.destroy();
+        }
+      } catch (InterruptedException e) {
+        process.destroy();
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+
+  /**
+   * Writes doubles from an array to a stream.
+   * @param out - the stream
+   * @param values - the values to write
+   * @param length - the number of values to write
+   * @throws IOException if the stream cannot be written
+   */
+  static void writeDoubles(final DataOutputStream out, final double[] values, final int length)
+    throws IOException {
+    for (int i = 0; i < length; i++) {
+      out.writeDouble(values[i]);
+    }
+  }
+
+
+  /**
+   * Reads doubles from a stream into an array.
+   * @param in - the stream
+   * @param values - the array to fill
+   * @param length - the number of values to read
+   * @throws IOException if the stream cannot be read
+   */
+  static void readDoubles(final DataInputStream in, final double[] values, final int length)
+    throws IOException {
+    for (int i = 0; i < length; i++) {
+      values[i] = in.readDouble();
+    }
+  }
+}
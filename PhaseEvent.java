@@ -0,0 +1,26 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * Java Flight Recorder event emitted for each timed phase of a training iteration.
+ * The event begins when the phase starts and is committed when it ends, so its
+ * duration is the time spent in the phase.
+ * @since 10/19/26
+ */
+@Name("keysignature.Phase")
+@Label("Training Phase")
+@Category("Key Signature Neural Network")
+@Description("Time spent in one phase of a training iteration")
+@StackTrace(false)
+class PhaseEvent extends Event {
+
+
+  /** The name of the phase that was timed */
+  @Label("Phase")
+  String phase;
+}
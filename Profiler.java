@@ -0,0 +1,205 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import jdk.jfr.EventType;
+
+
+/**
+ * Times the phases of each training iteration.
+ * While profiling is on, every measurement is added to a nanosecond histogram
+ * for its phase. While a Java Flight Recorder recording has {@link PhaseEvent}
+ * enabled, every phase is also recorded as an event, whether or not profiling
+ * is on. Otherwise each timing call costs only a couple of checks.
+ * @since 10/19/26
+ */
+class Profiler {
+
+
+  /**
+   * The phases of a training iteration that can be timed.
+   */
+  enum Phase {
+    SONG_GENERATION("Song generation"),
+    FREQUENCIES("Frequencies"),
+    ACTIVATION("Activation"),
+    WEIGHT_UPDATE("Weight update"),
+    INTERPRETATION("Interpretation"),
+    DISPLAY("Display");
+
+    /** The name used in reports and events */
+    private final String label;
+
+    Phase(final String label) {
+      this.label = label;
+    }
+  }
+
+  /** The number of histogram buckets; bucket b holds durations in [2^b, 2^(b+1)) ns */
+  private static final int BUCKETS = 64;
+
+  /** Whether phases are currently being timed */
+  private static volatile boolean enabled = false;
+
+  /** The event type of {@link PhaseEvent}, used to check whether JFR is recording it */
+  private static final EventType EVENT_TYPE = EventType.getEventType(PhaseEvent.class);
+
+  /** The event for the phase each thread is currently in, or null */
+  private static final ThreadLocal<PhaseEvent> current = new ThreadLocal<>();
+
+  /** The duration histograms, one per phase */
+  private static final AtomicLongArray[] histograms = new AtomicLongArray[Phase.values().length];
+
+  /** The total nanoseconds spent in each phase */
+  private static final AtomicLongArray totals = new AtomicLongArray(Phase.values().length);
+
+  static {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new AtomicLongArray(BUCKETS);
+    }
+  }
+
+
+  /**
+   * Turns timing on or off.
+   * @param on - true to start timing phases
+   */
+  static void setEnabled(final boolean on) {
+    enabled = on;
+  }
+
+
+  /**
+   * Returns whether phases are currently being timed.
+   * @return true if profiling is enabled
+   */
+  static boolean isEnabled() {
+    return enabled;
+  }
+
+
+  /**
+   * Marks the start of a phase.
+   * @return the current time in nanoseconds, or 0 if nothing is being timed
+   */
+  static long start() {
+    boolean recording = EVENT_TYPE.isEnabled();
+    if (!enabled && !recording) {
+      return 0L;
+    }
+    begin(recording);
+    return System.nanoTime();
+  }
+
+
+  /**
+   * Marks the end of a phase and records its duration.
+   * The returned time can be used as the start of the next phase.
+   * @param phase - the phase that just finished
+   * @param start - the time returned by {@link #start()} or a previous stop
+   * @return the current time in nanoseconds, or 0 if nothing is being timed
+   */
+  static long stop(final Phase phase, final long start) {
+    boolean recording = EVENT_TYPE.isEnabled();
+    if (!enabled && !recording) {
+      current.remove();
+      return 0L;
+    }
+    long now = System.nanoTime();
+    if (enabled) {
+      long elapsed = now - start;
+      totals.addAndGet(phase.ordinal(), elapsed);
+      histograms[phase.ordinal()].incrementAndGet(bucketOf(elapsed));
+    }
+
+    PhaseEvent event = current.get();
+    if (event != null) {
+      event.end();
+      if (event.shouldCommit()) {
+        event.phase = phase.label;
+        event.commit();
+      }
+    }
+    begin(recording);
+    return now;
+  }
+
+
+  /**
+   * Begins the event for the phase the current thread is entering.
+   * @param recording - whether JFR is recording phase events
+   */
+  private static void begin(final boolean recording) {
+    if (recording) {
+      PhaseEvent event = new PhaseEvent();
+      event.begin();
+      current.set(event);
+    } else {
+      current.remove();
+    }
+  }
+
+
+  /**
+   * Builds a report of the recorded timings for each phase.
+   * Percentiles are upper bounds of the histogram bucket they fall into.
+   * @return the timing report
+   */
+  static String report() {
+    long grandTotal = 0L;
+    for (int p = 0; p < totals.length(); p++) {
+      grandTotal += totals.get(p);
+    }
+
+    StringBuilder builder = new StringBuilder("Phase timings:\n");
+    builder.append(String.format("\t%-16s %14s %12s %10s %12s %12s %7s\n",
+      "Phase", "Count", "Total (ms)", "Mean (ns)", "p50 (ns)", "p99 (ns)", "Share"));
+    for (Phase phase : Phase.values()) {
+      AtomicLongArray histogram = histograms[phase.ordinal()];
+      long count = 0L;
+      for (int b = 0; b < BUCKETS; b++) {
+        count += histogram.get(b);
+      }
+      if (count == 0L) {
+        continue;
+      }
+      long total = totals.get(phase.ordinal());
+      builder.append(String.format("\t%-16s %,14d %,12.1f %,10d %,12d %,12d %6.2f%%\n",
+        phase.label,
+        count,
+        total / 1e6,
+        total / count,
+        percentile(histogram, count, 0.50),
+        percentile(histogram, count, 0.99),
+        grandTotal == 0L ? 0.0 : 100.0 * total / grandTotal));
+    }
+    return builder.toString();
+  }
+
+
+  /**
+   * Finds the histogram bucket for a duration.
+   * @param nanos - the duration in nanoseconds
+   * @return the bucket index
+   */
+  private static int bucketOf(final long nanos) {
+    return nanos <= 0L ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+  }
+
+
+  /**
+   * Estimates a percentile from a histogram.
+   * @param histogram - the duration histogram
+   * @param count - the total number of samples in the histogram
+   * @param fraction - the percentile as a fraction between 0 and 1
+   * @return upper bound of the bucket containing the percentile, in nanoseconds
+   */
+  private static long percentile(final AtomicLongArray histogram, final long count, final double fraction) {
+    long target = (long) Math.ceil(count * fraction);
+    long seen = 0L;
+    for (int b = 0; b < BUCKETS; b++) {
+      seen += histogram.get(b);
+      if (seen >= target) {
+        return b >= 62 ? Long.MAX_VALUE : (1L << (b + 1)) - 1;
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+}
@@ -0,0 +1,158 @@
+/**
+ * Detects the key of a continuous stream of notes over a sliding window.
+ * The note histogram of the window is updated in constant time per note, and a
+ * trained classifier, such as a neural network or an ensemble, is asked for the
+ * key every few notes. Whenever its
+ * answer differs from the previous one a {@link KeyChange} is reported.
+ * @since 10/19/26
+ */
+class SlidingKeyAnalyzer {
+
+
+  /**
+   * Identifies the key of a note histogram.
+   */
+  interface Classifier {
+
+    /**
+     * Identifies a key.
+     * @param frequencies - the number of occurrences of each note
+     * @return the key (0-11)
+     */
+    int classify(double[] frequencies);
+  }
+
+  /**
+   * Receives key changes detected by the analyzer.
+   */
+  interface Listener {
+
+    /**
+     * Called when the detected key changes.
+     * @param change - the detected key change
+     */
+    void keyChanged(KeyChange change);
+  }
+
+  /** The trained classifier; it is only read, never trained */
+  private final Classifier classifier;
+
+  /** The notes currently in the window, stored as a ring buffer */
+  private final byte[] window;
+
+  /** The number of occurrences of each note in the window */
+  private final double[] histogram = new double[12];
+
+  /** The number of notes between key detections */
+  private final int interval;
+
+  /** Receives detected key changes */
+  private final Listener listener;
+
+  /** The index in the window of the next note to be written */
+  private int head = 0;
+
+  /** The number of notes in the window */
+  private int size = 0;
+
+  /** The total number of notes streamed */
+  private long position = 0;
+
+  /** The number of notes streamed since the last detection */
+  private int sinceDetection = 0;
+
+  /** The most recently detected key, or -1 if none has been detected */
+  private int currentKey = -1;
+
+
+  /**
+   * Constructor.
+   * @param classifier - a trained classifier
+   * @param windowSize - the number of most recent notes the key is detected from
+   * @param interval - the number of notes between key detections
+   * @param listener - receives detected key changes
+   */
+  SlidingKeyAnalyzer(final Classifier classifier, final int windowSize, final int interval,
+                     final Listener listener) {
+    if (windowSize < 1) {
+      throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+    }
+    if (interval < 1) {
+      throw new IllegalArgumentException("Detection interval must be positive: " + interval);
+    }
+    this.classifier = classifier;
+    this.window = new byte[windowSize];
+    this.interval = interval;
+    this.listener = listener;
+  }
+
+
+  /**
+   * Adds the next note of the stream.
+   * Detection only starts once the window has been filled.
+   * @param note - the numerical value for a note (0-11)
+   */
+  void accept(final byte note) {
+    if (note < 0 || note > 11) {
+      throw new IllegalArgumentException("Note must be between 0 and 11: " + note);
+    }
+
+    // Slide the window: the oldest note leaves as the new one enters
+    if (size == window.length) {
+      histogram[window[head]]--;
+    } else {
+      size++;
+    }
+    window[head] = note;
+    histogram[note]++;
+    head = (head + 1) % window.length;
+    position++;
+
+    if (++sinceDetection >= interval && size == window.length) {
+      sinceDetection = 0;
+      detect();
+    }
+  }
+
+
+  /**
+   * Adds a series of notes to the stream.
+   * @param notes - the notes in the order they are played
+   */
+  void accept(final byte[] notes) {
+    for (byte note : notes) {
+      accept(note);
+    }
+  }
+
+
+  /**
+   * Gets the most recently detected key.
+   * @return current key, or -1 if no key has been detected yet
+   */
+  int getCurrentKey() {
+    return this.currentKey;
+  }
+
+
+  /**
+   * Gets the number of notes streamed so far.
+   * @return stream position
+   */
+  long getPosition() {
+    return this.position;
+  }
+
+
+  /**
+   * Runs the classifier on the window and reports a change of key.
+   */
+  private void detect() {
+    int key = classifier.classify(histogram);
+    if (key != currentKey) {
+      KeyChange change = new KeyChange(position, currentKey, key);
+      currentKey = key;
+      listener.keyChanged(change);
+    }
+  }
+}
@@ -30,6 +30,18 @@ class Song {
   }
 
 
+  /**
+   * Constructor.
+   * Creates a new random series of notes (song) based on a randomly generated key.
+   * @param random - the random number generator to create the song with
+   */
+  Song(final Random random) {
+    this.random = random;
+    key = generateRandomKey();
+    song = generateRandomSong();
+  }
+
+
   /**
    * Constructor.
    * Creates a new random series of notes (song) based on a specified key.
@@ -55,6 +67,15 @@ class Song {
   }
 
 
+  /**
+   * Getter for the notes of the song.
+   * @return a copy of the notes in the order they are played
+   */
+  byte[] getNotes() {
+    return song.clone();
+  }
+
+
   /**
    * Takes a byte array and returns the frequency of each note in an array of doubles.
    * @return array of doubles containing frequencies of each note
@@ -67,17 +88,6 @@ class Song {
   }
 
 
-  /**
-   * Takes the key of the song and assigns that index to 1 while keeping the rest of the indexes at 0.
-   * @return an array that contains all the correct answers for the net's output
-   */
-  double[] getExpectedOutput() {
-    double[] expectedAnswers = new double[12];
-    expectedAnswers[key] = 1.0;
-    return expectedAnswers;
-  }
-
-
   /**
    * Creates a new random series of notes based on the key signature.
    * @return a new random song based on the key
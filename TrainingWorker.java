@@ -0,0 +1,90 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Random;
+
+
+/**
+ * Trains a copy of the neural network for a {@link ParameterServer}.
+ * Each round the worker receives the shared parameters, trains on its own
+ * shard of songs for one sync interval and sends back how much the parameters
+ * changed.
+ * @since 10/19/26
+ */
+class TrainingWorker {
+
+
+  /**
+   * Connects to a coordinator on this machine and trains until it is done.
+   * @param port - the port the coordinator listens on
+   * @param shard - the index of this worker's shard of songs
+   * @param offHeap - whether to store the network off-heap
+   * @throws IOException if communication with the coordinator fails
+   */
+  static void run(final int port, final int shard, final boolean offHeap) throws IOException {
+    try (Socket socket = new Socket();
+         MemoryArena arena = offHeap ? MemoryArena.offHeap() : MemoryArena.heap()) {
+      socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+        ParameterServer.TIMEOUT);
+      socket.setTcpNoDelay(true);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      out.writeInt(shard);
+      out.flush();
+
+      // Receive the network configuration
+      int inputNodes = in.readInt();
+      int hiddenNodes = in.readInt();
+      int outputNodes = in.readInt();
+      double learningRate = in.readDouble();
+      int syncInterval = in.readInt();
+      int iterations = in.readInt();
+      Random random = new Random(in.readLong());
+      NeuralNet net = new NeuralNet(inputNodes, hiddenNodes, outputNodes, learningRate, arena);
+
+      // Remember the shared parameters, from the same arena as the network
+      long parameterCount = net.getParameterCount();
+      DoubleStorage start = arena.allocate(parameterCount);
+      double[] chunk = new double[ParameterServer.CHUNK];
+      for (int trained = 0; trained < iterations; ) {
+        for (long p = 0; p < parameterCount; p += ParameterServer.CHUNK) {
+          int length = (int) Math.min(ParameterServer.CHUNK, parameterCount - p);
+          ParameterServer.readDoubles(in, chunk, length);
+          net.setParameters(p, chunk, length);
+          start.copyFrom(chunk, 0, p, length);
+        }
+
+        // Train on this worker's shard for one sync interval
+        int count = Math.min(syncInterval, iterations - trained);
+        int correct = 0;
+        for (int i = 0; i < count; i++) {
+          Song song = new Song(random);
+          NeuralNetOutput output = net.run(song);
+          output.setCorrectAnswer(song.getKeyOfSong());
+          if (output.isCorrect()) {
+            correct++;
+          }
+        }
+        trained += count;
+
+        // Send back the change in parameters
+        out.writeInt(count);
+        out.writeInt(correct);
+        for (long p = 0; p < parameterCount; p += ParameterServer.CHUNK) {
+          int length = (int) Math.min(ParameterServer.CHUNK, parameterCount - p);
+          net.copyParameters(p, chunk, length);
+          for (int i = 0; i < length; i++) {
+            chunk[i] -= start.get(p + i);
+          }
+          ParameterServer.writeDoubles(out, chunk, length);
+        }
+        out.flush();
+      }
+    }
+  }
+}